@@ -6,7 +6,7 @@ readonly ENCODING=UTF-8
 
 if [ -e build/wordsplit.jar ]; then
   java -Xmx$MEM_MAX -Xms$MEM_MIN -Dfile.encoding=$ENCODING \
-    -jar build/wordsplit.jar $1 $2
+    -jar build/wordsplit.jar "$@"
 else
   readonly ANT=$(command -v ant)
 
@@ -23,70 +23,198 @@ package com.whitemagicsoftware.wordsplit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * An almost generic class for generating all possible combinations of
  * values in a list as a list.
  */
 public class Combinations {
-  private final static int MAX_DEPTH = 22;
+  static final int MAX_DEPTH = 22;
 
   private final Visitor<Map.Entry<String, Double>> mVisitor;
-  private final List<SegmentAnalysis> mAnalysis = new ArrayList<>();
+
+  /**
+   * Maximum total length of the words in any combination.
+   */
+  private final int mBudget;
+
+  /**
+   * Recursion depth above which the include and exclude branches are
+   * searched by separate fork-join tasks.
+   */
+  private final int mForkDepth;
 
   /**
    * @param visitor - The class used to examine each possible text segment.
    */
   public Combinations( final Visitor<Map.Entry<String, Double>> visitor ) {
+    this( visitor, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @param visitor - The class used to examine each possible text segment.
+   * @param budget  - Combinations whose words are longer than this, in
+   *                total, are not visited, nor are any combinations that
+   *                extend them.
+   */
+  public Combinations(
+    final Visitor<Map.Entry<String, Double>> visitor, final int budget ) {
+    this( visitor, budget, 0 );
+  }
+
+  /**
+   * @param visitor   - The class used to examine each possible text segment;
+   *                  must be safe to call from multiple threads when the
+   *                  fork depth is positive.
+   * @param budget    - Maximum total length of words in any combination.
+   * @param forkDepth - Branches above this depth are searched in parallel;
+   *                  0 searches serially.
+   */
+  public Combinations(
+    final Visitor<Map.Entry<String, Double>> visitor,
+    final int budget,
+    final int forkDepth ) {
     mVisitor = visitor;
+    mBudget = budget;
+    mForkDepth = forkDepth;
   }
 
   /**
-   * Entry point.
+   * Entry point. Visits every combination of the given words, serially,
+   * and returns every analysis in the order visited.
    *
    * @param initial - List of possible words that could constitute a solution.
    */
   public List<SegmentAnalysis> root(
     final List<Map.Entry<String, Double>> initial ) {
-    clearAnalysis();
-    root( new ArrayList<>(), initial, 0 );
-    return getAnalysis();
+    final var analysis = new ArrayList<SegmentAnalysis>();
+    final Visitor<Map.Entry<String, Double>> collector = combination -> {
+      final var sa = getVisitor().visit( combination );
+      analysis.add( sa );
+      return sa;
+    };
+
+    new Combinations( collector, getBudget(), 0 ).best( initial );
+    return analysis;
+  }
+
+  /**
+   * Entry point. Visits every combination of the given words and returns
+   * the most likely solution, without retaining every analysis. Each
+   * fork-join task keeps its own best analysis, which is merged with its
+   * siblings' in the order that a serial search would have visited them.
+   *
+   * @param initial - List of possible words that could constitute a solution.
+   * @return The winning analysis, or null if no combination used all of its
+   * words.
+   */
+  public SegmentAnalysis best(
+    final List<Map.Entry<String, Double>> initial ) {
+    return new Search( new ArrayList<>(), initial, 0, 0 ).invoke();
   }
 
   /**
-   * Print all subsets of the remaining elements, with given prefix.
+   * Returns the best analysis among all subsets of the remaining elements,
+   * with given prefix. The subsets that include the first remaining element
+   * are visited before those that exclude it.
+   *
+   * @param chars - Total length of the words in the prefix.
    */
-  private void root(
+  private SegmentAnalysis best(
     final List<Map.Entry<String, Double>> prefix,
     final List<Map.Entry<String, Double>> remain,
-    final int depth ) {
-    if( !remain.isEmpty() && depth < MAX_DEPTH ) {
-      final var combination = createArray( prefix.size() + 1 );
-      combination.addAll( prefix );
-      combination.add( remain.get( 0 ) );
-      addAnalysis( getVisitor().visit( combination ) );
+    final int depth,
+    final int chars ) {
+    SegmentAnalysis solution = null;
 
+    if( !remain.isEmpty() && depth < MAX_DEPTH ) {
+      final var head = remain.get( 0 );
+      final var length = chars + head.getKey().length();
       final var r = createArray( remain.size() );
       r.addAll( remain.subList( 1, remain.size() ) );
-      root( combination, r, depth + 1 );
-      root( prefix, r, depth + 1 );
+
+      Search exclude = null;
+
+      // Start on the exclude branch while this thread takes the include
+      // branch, which is visited first when searching serially.
+      if( depth < getForkDepth() ) {
+        exclude = new Search( prefix, r, depth + 1, chars );
+        exclude.fork();
+      }
+
+      // Adding words never shortens a combination, so once the budget is
+      // exceeded every combination built from this one is skipped as well.
+      if( length <= getBudget() ) {
+        final var combination = createArray( prefix.size() + 1 );
+        combination.addAll( prefix );
+        combination.add( head );
+        solution = select( solution, getVisitor().visit( combination ) );
+        solution = select(
+          solution, best( combination, r, depth + 1, length ) );
+      }
+
+      solution = select( solution, exclude == null
+        ? best( prefix, r, depth + 1, chars )
+        : exclude.join() );
     }
+
+    return solution;
   }
 
-  private Visitor<Map.Entry<String, Double>> getVisitor() {
-    return mVisitor;
+  /**
+   * Applies the selection rules for a solution to two analyses, where the
+   * first was visited before the second. Analyses that did not use all of
+   * their words are never selected.
+   *
+   * @return The preferred analysis, or null if neither is acceptable.
+   */
+  private static SegmentAnalysis select(
+    final SegmentAnalysis earlier, final SegmentAnalysis later ) {
+    if( later == null || !later.matchedAllWords() ) {
+      return earlier;
+    }
+
+    return earlier == null || later.supersedes( earlier ) ? later : earlier;
+  }
+
+  /**
+   * Searches one branch of the recursion tree, possibly forking further.
+   */
+  @SuppressWarnings( "serial" )
+  private final class Search extends RecursiveTask<SegmentAnalysis> {
+    private final List<Map.Entry<String, Double>> mPrefix;
+    private final List<Map.Entry<String, Double>> mRemain;
+    private final int mDepth;
+    private final int mChars;
+
+    private Search(
+      final List<Map.Entry<String, Double>> prefix,
+      final List<Map.Entry<String, Double>> remain,
+      final int depth,
+      final int chars ) {
+      mPrefix = prefix;
+      mRemain = remain;
+      mDepth = depth;
+      mChars = chars;
+    }
+
+    @Override
+    protected SegmentAnalysis compute() {
+      return best( mPrefix, mRemain, mDepth, mChars );
+    }
   }
 
-  private void clearAnalysis() {
-    getAnalysis().clear();
+  private Visitor<Map.Entry<String, Double>> getVisitor() {
+    return mVisitor;
   }
 
-  private List<SegmentAnalysis> getAnalysis() {
-    return mAnalysis;
+  private int getBudget() {
+    return mBudget;
   }
 
-  private void addAnalysis( final SegmentAnalysis sa ) {
-    getAnalysis().add( sa );
+  private int getForkDepth() {
+    return mForkDepth;
   }
 
   private static List<Map.Entry<String, Double>> createArray( final int size ) {
@@ -0,0 +1,386 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Routes each concatenated phrase to the cheapest strategy expected to
+ * produce the exact answer. The routing decision uses inexpensive features
+ * of the phrase: its length, the number of candidate words found within it,
+ * how densely those candidates overlap, and how much of the candidate list
+ * the greedy pass was able to account for.
+ * <p>
+ * The greedy pass is always exact when it accounts for every candidate.
+ * Lowering the coverage threshold also accepts greedy splits that missed
+ * some candidates, provided the candidates are sparse enough that they
+ * cannot all fit within the phrase only by overlapping.
+ * </p>
+ * <p>
+ * Thresholds may be set using the following system properties:
+ * </p>
+ * <ul>
+ * <li><code>wordsplit.greedy.coverage</code> - Fraction of candidate words
+ * the greedy pass must account for to be accepted (default 1.0).</li>
+ * <li><code>wordsplit.greedy.density</code> - Maximum ratio of total
+ * candidate length to phrase length for accepting an incomplete greedy
+ * pass (default 1.0).</li>
+ * <li><code>wordsplit.parallel.combinations</code> - Phrases whose bounded
+ * search visits at least this many combinations are searched using all
+ * processors (default 100000).</li>
+ * <li><code>wordsplit.parallel.depth</code> - Depth of the search tree to
+ * which parallel searches fork tasks (default enough tasks to keep every
+ * processor busy).</li>
+ * </ul>
+ */
+public class Dispatcher {
+  private static final Logger LOG =
+    Logger.getLogger( Dispatcher.class.getName() );
+
+  private static final String PROP_GREEDY_COVERAGE =
+    "wordsplit.greedy.coverage";
+  private static final String PROP_GREEDY_DENSITY =
+    "wordsplit.greedy.density";
+
+  private static final String PROP_PARALLEL_COMBINATIONS =
+    "wordsplit.parallel.combinations";
+  private static final String PROP_PARALLEL_DEPTH =
+    "wordsplit.parallel.depth";
+
+  private static final double DEFAULT_GREEDY_COVERAGE = 1.0;
+  private static final double DEFAULT_GREEDY_DENSITY = 1.0;
+  private static final long DEFAULT_PARALLEL_COMBINATIONS = 100_000;
+
+  /**
+   * Forks to depth floor(log2(p)) + 3, giving between four and eight leaf
+   * tasks per processor so that unevenly pruned branches still balance out.
+   */
+  private static final int DEFAULT_PARALLEL_DEPTH = 2 + Integer.SIZE -
+    Integer.numberOfLeadingZeros( Runtime.getRuntime().availableProcessors() );
+
+  /**
+   * Minimum fraction of candidates the greedy pass must account for.
+   */
+  private final double mGreedyCoverage;
+
+  /**
+   * Maximum candidate density at which an incomplete greedy pass is
+   * accepted.
+   */
+  private final double mGreedyDensity;
+
+  /**
+   * Searches visiting fewer combinations than this are too small to be
+   * worth splitting across processors.
+   */
+  private final long mParallelCombinations;
+
+  /**
+   * Depth to which a parallel search forks tasks.
+   */
+  private final int mParallelDepth;
+
+  private final Map<Strategy, Tally> mTallies =
+    new EnumMap<>( Strategy.class );
+
+  /**
+   * Creates a dispatcher using thresholds from the system properties,
+   * falling back to defaults for any that are missing or malformed.
+   */
+  public Dispatcher() {
+    this(
+      getDouble( PROP_GREEDY_COVERAGE, DEFAULT_GREEDY_COVERAGE ),
+      getDouble( PROP_GREEDY_DENSITY, DEFAULT_GREEDY_DENSITY ),
+      Long.getLong(
+        PROP_PARALLEL_COMBINATIONS, DEFAULT_PARALLEL_COMBINATIONS ),
+      Integer.getInteger( PROP_PARALLEL_DEPTH, DEFAULT_PARALLEL_DEPTH ) );
+  }
+
+  /**
+   * @param greedyCoverage       - Minimum greedy coverage for the greedy
+   *                             strategy.
+   * @param greedyDensity        - Maximum candidate density for accepting
+   *                             an incomplete greedy pass.
+   * @param parallelCombinations - Minimum visited combinations for parallel
+   *                             search.
+   * @param parallelDepth        - Depth to which parallel searches fork.
+   */
+  public Dispatcher(
+    final double greedyCoverage,
+    final double greedyDensity,
+    final long parallelCombinations,
+    final int parallelDepth ) {
+    mGreedyCoverage = greedyCoverage;
+    mGreedyDensity = greedyDensity;
+    mParallelCombinations = parallelCombinations;
+    mParallelDepth = parallelDepth;
+
+    for( final var strategy : Strategy.values() ) {
+      mTallies.put( strategy, new Tally() );
+    }
+  }
+
+  /**
+   * Decides which strategy will split the given phrase.
+   *
+   * @param concat    - The phrase without spaces to split into words.
+   * @param words     - Candidate words found within the phrase.
+   * @param wordsUsed - Number of candidates accounted for by the greedy pass.
+   * @return The cheapest strategy expected to find the exact answer.
+   */
+  public Route route(
+    final String concat,
+    final List<Map.Entry<String, Double>> words,
+    final int wordsUsed ) {
+    final var length = concat.length();
+    final var wordCount = words.size();
+    final var coverage = wordCount == 0 ? 1.0 : wordsUsed / (double) wordCount;
+    final var density = density( words, length );
+    final var searched = Math.min( wordCount, Combinations.MAX_DEPTH );
+    final var combinations = (1L << searched) - 1;
+    final var visits = wordsUsed == wordCount
+      ? 0
+      : visits( words, searched, length );
+
+    final var strategy =
+      wordsUsed == wordCount ||
+        coverage >= mGreedyCoverage && density <= mGreedyDensity
+        ? Strategy.GREEDY
+        : visits >= mParallelCombinations
+        ? Strategy.PARALLEL
+        : Strategy.BOUNDED;
+
+    LOG.fine( () -> format(
+      "%s: length=%d candidates=%d density=%.2f coverage=%.2f " +
+        "visits=%d/%d -> %s",
+      concat, length, wordCount, density, coverage, visits, combinations,
+      strategy ) );
+
+    return new Route( strategy, coverage, visits, combinations );
+  }
+
+  /**
+   * Decides how deep into the search tree a phrase's combinations are
+   * split into parallel tasks.
+   *
+   * @param route - The route returned from {@link #route}.
+   * @return The fork depth, or 0 to search serially.
+   */
+  public int forkDepth( final Route route ) {
+    return route.getStrategy() == Strategy.PARALLEL ? mParallelDepth : 0;
+  }
+
+  /**
+   * Records that a phrase was split along the given route.
+   *
+   * @param route - The route returned from {@link #route}.
+   * @param nanos - Time taken to split the phrase.
+   */
+  public void record( final Route route, final long nanos ) {
+    final var tally = mTallies.get( route.getStrategy() );
+
+    tally.mPhrases.increment();
+    tally.mElapsed.add( nanos );
+
+    if( route.getStrategy() == Strategy.GREEDY ) {
+      if( route.getCoverage() == 1.0 ) {
+        tally.mExact.increment();
+      }
+    }
+    else {
+      tally.mVisits.add( route.getVisits() );
+      tally.mCombinations.add( route.getCombinations() );
+
+      if( route.getVisits() < route.getCombinations() ) {
+        tally.mPruned.increment();
+      }
+    }
+  }
+
+  /**
+   * Logs the proportion of phrases routed to each strategy and the mean
+   * time each strategy took per phrase. For the greedy strategy, also logs
+   * how many phrases were accounted for completely. For searches, also logs
+   * how many phrases had combinations pruned and the fraction of all
+   * combinations that were visited.
+   */
+  public void report() {
+    long total = 0;
+
+    for( final var tally : mTallies.values() ) {
+      total += tally.mPhrases.sum();
+    }
+
+    for( final var strategy : Strategy.values() ) {
+      final var tally = mTallies.get( strategy );
+      final var phrases = tally.mPhrases.sum();
+      final var rate = total == 0 ? 0.0 : 100.0 * phrases / total;
+      final var mean = phrases == 0
+        ? 0.0
+        : tally.mElapsed.sum() / (phrases * 1e6);
+      var message = format(
+        "%s: %d of %d phrases (%.1f%%), %.3f ms mean",
+        strategy, phrases, total, rate, mean );
+
+      if( phrases > 0 ) {
+        if( strategy == Strategy.GREEDY ) {
+          message += format(
+            ", %d exact (%.1f%%)",
+            tally.mExact.sum(), 100.0 * tally.mExact.sum() / phrases );
+        }
+        else {
+          final var visits = tally.mVisits.sum();
+          final var combinations = tally.mCombinations.sum();
+
+          message += format(
+            ", %d pruned (%.1f%%), %d of %d combinations visited (%.1f%%)",
+            tally.mPruned.sum(), 100.0 * tally.mPruned.sum() / phrases,
+            visits, combinations, 100.0 * visits / combinations );
+        }
+      }
+
+      LOG.info( message );
+    }
+  }
+
+  /**
+   * Returns the total length of all candidate words relative to the phrase
+   * length. Values above 1.0 mean that some candidates must overlap.
+   */
+  private static double density(
+    final List<Map.Entry<String, Double>> words, final int length ) {
+    long chars = 0;
+
+    for( final var entry : words ) {
+      chars += entry.getKey().length();
+    }
+
+    return length == 0 ? 0.0 : chars / (double) length;
+  }
+
+  /**
+   * Counts the combinations that a bounded search will visit: the
+   * non-empty subsets of the searched candidates whose words, in total,
+   * are no longer than the phrase.
+   *
+   * @param words    - Candidate words found within the phrase.
+   * @param searched - Number of leading candidates that are searched.
+   * @param length   - Length of the phrase.
+   */
+  private static long visits(
+    final List<Map.Entry<String, Double>> words,
+    final int searched,
+    final int length ) {
+    // Number of subsets (so far) whose words total each possible length.
+    final var subsets = new long[ length + 1 ];
+    subsets[ 0 ] = 1;
+
+    for( int i = 0; i < searched; i++ ) {
+      final var wlen = words.get( i ).getKey().length();
+
+      for( int chars = length; chars >= wlen; chars-- ) {
+        subsets[ chars ] += subsets[ chars - wlen ];
+      }
+    }
+
+    long visits = -1;
+
+    for( final var count : subsets ) {
+      visits += count;
+    }
+
+    return visits;
+  }
+
+  private static double getDouble( final String key, final double fallback ) {
+    try {
+      final var value = System.getProperty( key );
+      return value == null ? fallback : Double.parseDouble( value );
+    } catch( final NumberFormatException e ) {
+      return fallback;
+    }
+  }
+
+  /**
+   * The strategy chosen for a phrase, along with the size of its search.
+   */
+  public static final class Route {
+    private final Strategy mStrategy;
+    private final double mCoverage;
+    private final long mVisits;
+    private final long mCombinations;
+
+    private Route(
+      final Strategy strategy,
+      final double coverage,
+      final long visits,
+      final long combinations ) {
+      mStrategy = strategy;
+      mCoverage = coverage;
+      mVisits = visits;
+      mCombinations = combinations;
+    }
+
+    public Strategy getStrategy() {
+      return mStrategy;
+    }
+
+    /**
+     * Returns the fraction of candidates the greedy pass accounted for.
+     */
+    public double getCoverage() {
+      return mCoverage;
+    }
+
+    /**
+     * Returns the number of combinations a bounded search visits, or 0
+     * when the greedy pass accounted for every candidate.
+     */
+    public long getVisits() {
+      return mVisits;
+    }
+
+    /**
+     * Returns the number of combinations an unbounded search would visit.
+     */
+    public long getCombinations() {
+      return mCombinations;
+    }
+  }
+
+  /**
+   * Running totals for one strategy.
+   */
+  private static final class Tally {
+    private final LongAdder mPhrases = new LongAdder();
+    private final LongAdder mElapsed = new LongAdder();
+    private final LongAdder mExact = new LongAdder();
+    private final LongAdder mPruned = new LongAdder();
+    private final LongAdder mVisits = new LongAdder();
+    private final LongAdder mCombinations = new LongAdder();
+  }
+}
@@ -0,0 +1,389 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads a lexicon of words and probabilities, one per line, separated by a
+ * comma. The file is memory-mapped and divided into line-aligned chunks that
+ * are parsed in parallel, without decoding whole lines or using regular
+ * expressions. A leading UTF-8 byte order mark is ignored. Lines whose
+ * probability cannot be parsed are given a probability of 0 and counted.
+ */
+public class LexiconLoader {
+  private static final Logger LOG =
+    Logger.getLogger( LexiconLoader.class.getName() );
+
+  /**
+   * Chunks are never larger than a single memory map allows.
+   */
+  private static final long MAX_CHUNK = 1L << 30;
+
+  /**
+   * Files smaller than this are not worth parsing in parallel.
+   */
+  static final long MIN_CHUNK = 1L << 20;
+
+  /**
+   * Rough number of bytes per lexicon line, used to presize arrays.
+   */
+  private static final int BYTES_PER_LINE = 16;
+
+  /**
+   * Mantissas at or below this value are exactly representable as doubles.
+   */
+  private static final long MAX_EXACT = 1L << 53;
+
+  /**
+   * Powers of ten that are exactly representable as doubles.
+   */
+  private static final double[] POWERS = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /**
+   * Returned by the probability parser for malformed numbers.
+   */
+  private static final double INVALID = Double.NaN;
+
+  /**
+   * Probability given to words that have a malformed probability. This is
+   * likely an error in the heuristics that should be fixed.
+   */
+  private static final double DEFAULT_PROBABILITY = 0.0;
+
+  private final File mLexicon;
+  private final int mMinLength;
+
+  /**
+   * Number of lines with a malformed probability in the last load.
+   */
+  private int mInvalid;
+
+  /**
+   * @param lexicon   - CSV file of words and probabilities.
+   * @param minLength - Words shorter than this are skipped.
+   */
+  public LexiconLoader( final File lexicon, final int minLength ) {
+    mLexicon = lexicon;
+    mMinLength = minLength;
+  }
+
+  /**
+   * Parses the lexicon. When a word appears more than once, the last
+   * occurrence wins.
+   *
+   * @return Lowercase words mapped to their probabilities.
+   */
+  public Map<String, Double> load() throws IOException {
+    final var path = mLexicon.toPath();
+    final List<Chunk> chunks;
+
+    try( final var channel = FileChannel.open( path ) ) {
+      final var size = channel.size();
+      final var processors = Runtime.getRuntime().availableProcessors();
+      final var count = (int) Math.max(
+        (size + MAX_CHUNK - 1) / MAX_CHUNK,
+        Math.min( processors * 4L, (size + MIN_CHUNK - 1) / MIN_CHUNK ) );
+      final var bounds = LineRanges.split( path, count );
+
+      chunks = IntStream.range( 0, bounds.length - 1 )
+                        .parallel()
+                        .mapToObj( i -> parse( channel, bounds[ i ],
+                                               bounds[ i + 1 ] ) )
+                        .collect( Collectors.toList() );
+    } catch( final UncheckedIOException e ) {
+      throw e.getCause();
+    }
+
+    int entries = 0;
+    int invalid = 0;
+
+    for( final var chunk : chunks ) {
+      entries += chunk.mSize;
+      invalid += chunk.mInvalid;
+    }
+
+    mInvalid = invalid;
+
+    final var lexicon = new HashMap<String, Double>(
+      (int) (entries / 0.75f) + 1 );
+
+    // Merge in file order so that later duplicates replace earlier ones.
+    for( final var chunk : chunks ) {
+      for( int i = 0; i < chunk.mSize; i++ ) {
+        lexicon.put( chunk.mWords[ i ], chunk.mProbabilities[ i ] );
+      }
+    }
+
+    LOG.info( format(
+      "%s: %d words, %d lines with invalid probabilities",
+      mLexicon, lexicon.size(), invalid ) );
+
+    return lexicon;
+  }
+
+  /**
+   * Returns the number of lines whose probability could not be parsed by
+   * the most recent call to {@link #load()}.
+   */
+  public int getInvalid() {
+    return mInvalid;
+  }
+
+  /**
+   * Parses the lines within a byte range of the lexicon.
+   */
+  private Chunk parse(
+    final FileChannel channel, final long offset, final long end ) {
+    final ByteBuffer buffer;
+
+    try {
+      buffer = channel.map( READ_ONLY, offset, end - offset );
+    } catch( final IOException e ) {
+      throw new UncheckedIOException( e );
+    }
+
+    final var limit = buffer.limit();
+    final var chunk = new Chunk( limit / BYTES_PER_LINE + 1 );
+    var scratch = new byte[ 64 ];
+    var position = offset == 0 && hasByteOrderMark( buffer ) ? 3 : 0;
+
+    while( position < limit ) {
+      var eol = position;
+
+      while( eol < limit && buffer.get( eol ) != '\n' ) {
+        eol++;
+      }
+
+      final var next = eol + 1;
+
+      if( eol > position && buffer.get( eol - 1 ) == '\r' ) {
+        eol--;
+      }
+
+      var comma = position;
+
+      while( comma < eol && buffer.get( comma ) != ',' ) {
+        comma++;
+      }
+
+      final var length = comma - position;
+
+      if( length >= mMinLength ) {
+        if( scratch.length < length ) {
+          scratch = new byte[ length * 2 ];
+        }
+
+        for( int i = 0; i < length; i++ ) {
+          scratch[ i ] = buffer.get( position + i );
+        }
+
+        final var word = new String( scratch, 0, length, UTF_8 ).toLowerCase();
+
+        // Multibyte characters may leave the word too short after decoding.
+        if( word.length() >= mMinLength ) {
+          var fieldEnd = comma + 1;
+
+          while( fieldEnd < eol && buffer.get( fieldEnd ) != ',' ) {
+            fieldEnd++;
+          }
+
+          var probability = comma < eol
+            ? parseProbability( buffer, comma + 1, fieldEnd )
+            : INVALID;
+
+          if( Double.isNaN( probability ) ) {
+            probability = DEFAULT_PROBABILITY;
+            chunk.mInvalid++;
+          }
+
+          chunk.add( word, probability );
+        }
+      }
+
+      position = next;
+    }
+
+    return chunk;
+  }
+
+  /**
+   * Parses a decimal number, with optional sign, fraction, and exponent,
+   * from the given byte range. Surrounding white space is ignored.
+   *
+   * @return The parsed value, or {@link #INVALID} if the range is not a
+   * number.
+   */
+  private static double parseProbability(
+    final ByteBuffer buffer, int i, int end ) {
+    while( i < end && isWhitespace( buffer.get( i ) ) ) {
+      i++;
+    }
+
+    while( end > i && isWhitespace( buffer.get( end - 1 ) ) ) {
+      end--;
+    }
+
+    final var start = i;
+    var negative = false;
+
+    if( i < end && (buffer.get( i ) == '-' || buffer.get( i ) == '+') ) {
+      negative = buffer.get( i ) == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int scale = 0;
+    int digits = 0;
+
+    // Digits beyond an exact mantissa are only validated; such numbers are
+    // converted by the standard library below.
+    for( ; i < end && isDigit( buffer.get( i ) ); i++, digits++ ) {
+      if( mantissa <= MAX_EXACT ) {
+        mantissa = mantissa * 10 + buffer.get( i ) - '0';
+      }
+    }
+
+    if( i < end && buffer.get( i ) == '.' ) {
+      for( i++; i < end && isDigit( buffer.get( i ) ); i++, digits++ ) {
+        if( mantissa <= MAX_EXACT ) {
+          mantissa = mantissa * 10 + buffer.get( i ) - '0';
+          scale--;
+        }
+      }
+    }
+
+    if( digits == 0 ) {
+      return INVALID;
+    }
+
+    if( i < end && (buffer.get( i ) == 'e' || buffer.get( i ) == 'E') ) {
+      i++;
+
+      var negativeExponent = false;
+
+      if( i < end && (buffer.get( i ) == '-' || buffer.get( i ) == '+') ) {
+        negativeExponent = buffer.get( i ) == '-';
+        i++;
+      }
+
+      int exponent = 0;
+      int exponentDigits = 0;
+
+      for( ; i < end && isDigit( buffer.get( i ) ); i++, exponentDigits++ ) {
+        exponent = Math.min( exponent * 10 + buffer.get( i ) - '0', 99999 );
+      }
+
+      if( exponentDigits == 0 ) {
+        return INVALID;
+      }
+
+      scale += negativeExponent ? -exponent : exponent;
+    }
+
+    if( i != end ) {
+      return INVALID;
+    }
+
+    // Small mantissas scaled by exact powers of ten round correctly;
+    // anything else is left to the standard library.
+    if( mantissa <= MAX_EXACT && Math.abs( scale ) < POWERS.length ) {
+      final double value = scale < 0
+        ? mantissa / POWERS[ -scale ]
+        : mantissa * POWERS[ scale ];
+
+      return negative ? -value : value;
+    }
+
+    final var number = new byte[ end - start ];
+
+    for( int j = 0; j < number.length; j++ ) {
+      number[ j ] = buffer.get( start + j );
+    }
+
+    return Double.parseDouble( new String( number, US_ASCII ) );
+  }
+
+  private static boolean isDigit( final byte b ) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * Matches the characters that {@link String#trim()} removes. Bytes are
+   * compared unsigned so that UTF-8 continuation bytes are not white space.
+   */
+  private static boolean isWhitespace( final byte b ) {
+    return (b & 0xFF) <= ' ';
+  }
+
+  private static boolean hasByteOrderMark( final ByteBuffer buffer ) {
+    return buffer.limit() >= 3 &&
+      (buffer.get( 0 ) & 0xFF) == 0xEF &&
+      (buffer.get( 1 ) & 0xFF) == 0xBB &&
+      (buffer.get( 2 ) & 0xFF) == 0xBF;
+  }
+
+  /**
+   * Words and probabilities parsed from one range of the lexicon, in file
+   * order.
+   */
+  private static final class Chunk {
+    private String[] mWords;
+    private double[] mProbabilities;
+    private int mSize;
+    private int mInvalid;
+
+    private Chunk( final int capacity ) {
+      mWords = new String[ capacity ];
+      mProbabilities = new double[ capacity ];
+    }
+
+    private void add( final String word, final double probability ) {
+      if( mSize == mWords.length ) {
+        mWords = Arrays.copyOf( mWords, mSize * 2 );
+        mProbabilities = Arrays.copyOf( mProbabilities, mSize * 2 );
+      }
+
+      mWords[ mSize ] = word;
+      mProbabilities[ mSize ] = probability;
+      mSize++;
+    }
+  }
+}
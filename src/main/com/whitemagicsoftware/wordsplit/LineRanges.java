@@ -0,0 +1,179 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Divides files into byte ranges that begin on line boundaries, so that
+ * each range can be processed independently.
+ */
+final class LineRanges {
+  private LineRanges() { }
+
+  /**
+   * Divides a file into roughly equal byte ranges that start at the
+   * beginning of a line. Ranges are empty when lines are longer than the
+   * nominal range size.
+   *
+   * @param file   - The file to divide.
+   * @param shards - The number of ranges.
+   * @return Offsets of each range's start, followed by the file length.
+   */
+  static long[] split( final Path file, final int shards )
+    throws IOException {
+    final var count = Math.max( 1, shards );
+    final var bounds = new long[ count + 1 ];
+
+    try( final var channel = FileChannel.open( file ) ) {
+      final var size = channel.size();
+      final var buffer = ByteBuffer.allocate( 8192 );
+
+      bounds[ count ] = size;
+
+      for( int i = 1; i < count; i++ ) {
+        var position = Math.max( bounds[ i - 1 ], size * i / count );
+
+        // Advance to just past the next newline, unless the previous range
+        // already ends at a line boundary.
+        if( position > bounds[ i - 1 ] ) {
+          position = lineEnd( channel, buffer, position - 1, size );
+        }
+
+        bounds[ i ] = position;
+      }
+    }
+
+    return bounds;
+  }
+
+  /**
+   * Opens a stream that reads only the bytes within the given range.
+   *
+   * @param file   - The file to read.
+   * @param offset - Index of the first byte to read.
+   * @param end    - Index after the last byte to read.
+   */
+  static InputStream open( final Path file, final long offset, final long end )
+    throws IOException {
+    final var channel = FileChannel.open( file );
+
+    try {
+      channel.position( offset );
+      return new RangeInputStream(
+        Channels.newInputStream( channel ), end - offset );
+    } catch( final IOException e ) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the offset following the first newline at or after the given
+   * position, or the channel size when there are no more newlines.
+   */
+  private static long lineEnd(
+    final FileChannel channel,
+    final ByteBuffer buffer,
+    long position,
+    final long size ) throws IOException {
+    while( position < size ) {
+      buffer.clear();
+
+      final var read = channel.read( buffer, position );
+
+      if( read <= 0 ) {
+        break;
+      }
+
+      for( int i = 0; i < read; i++ ) {
+        if( buffer.get( i ) == '\n' ) {
+          return position + i + 1;
+        }
+      }
+
+      position += read;
+    }
+
+    return size;
+  }
+
+  /**
+   * Stops reading after a fixed number of bytes.
+   */
+  private static final class RangeInputStream extends FilterInputStream {
+    private long mRemaining;
+
+    private RangeInputStream( final InputStream in, final long length ) {
+      super( in );
+      mRemaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if( mRemaining <= 0 ) {
+        return -1;
+      }
+
+      final var b = super.read();
+
+      if( b >= 0 ) {
+        mRemaining--;
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+      throws IOException {
+      if( mRemaining <= 0 ) {
+        return -1;
+      }
+
+      final var read = super.read( b, off, (int) Math.min( len, mRemaining ) );
+
+      if( read > 0 ) {
+        mRemaining -= read;
+      }
+
+      return read;
+    }
+
+    @Override
+    public long skip( final long n ) throws IOException {
+      final var skipped = super.skip( Math.min( n, mRemaining ) );
+      mRemaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min( super.available(), mRemaining );
+    }
+  }
+}
@@ -46,10 +46,39 @@ public class Main {
       final var conjoined = new File( args[ 1 ] );
       new TextSegmenter( heuristics, conjoined ).run();
     }
+    else if( args.length == 3 && ShardWorker.ARGUMENT.equals( args[ 2 ] ) ) {
+      // Invoked by the ShardCoordinator to split shards on request.
+      final var heuristics = new File( args[ 0 ] );
+      final var conjoined = new File( args[ 1 ] );
+      new ShardWorker( heuristics, conjoined ).run();
+    }
+    else if( args.length == 3 && parseWorkers( args[ 2 ] ) > 0 ) {
+      final var heuristics = new File( args[ 0 ] );
+      final var conjoined = new File( args[ 1 ] );
+      final var workers = parseWorkers( args[ 2 ] );
+      new ShardCoordinator( heuristics, conjoined, workers ).run();
+    }
     else {
-      out( Main.class.getCanonicalName() + " <lexicon> <conjoined>" );
-      out( "<lexicon>   - CSV file: word,probability" );
-      out( "<conjoined> - Text file" );
+      usage();
     }
   }
+
+  /**
+   * Returns the number of worker JVMs requested, or 0 if the argument is
+   * not a number.
+   */
+  private static int parseWorkers( final String workers ) {
+    try {
+      return Integer.parseInt( workers );
+    } catch( final NumberFormatException e ) {
+      return 0;
+    }
+  }
+
+  private static void usage() {
+    out( Main.class.getCanonicalName() + " <lexicon> <conjoined> [workers]" );
+    out( "<lexicon>   - CSV file: word,probability" );
+    out( "<conjoined> - Text file" );
+    out( "[workers]   - Number of worker JVMs to split the text across" );
+  }
 }
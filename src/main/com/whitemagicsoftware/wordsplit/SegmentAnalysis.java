@@ -62,6 +62,24 @@ public class SegmentAnalysis {
     return getRemaining().length();
   }
 
+  /**
+   * Answers whether this analysis is a more likely solution than one that
+   * was found before it. Fewer remaining characters always wins; otherwise
+   * the higher probability wins, with ties going to the earlier analysis.
+   * Probabilities at or below {@link Double#MIN_VALUE} are treated as equal.
+   *
+   * @param earlier - An analysis that used all of its words.
+   * @return true if this analysis should replace the earlier one.
+   */
+  public boolean supersedes( final SegmentAnalysis earlier ) {
+    final var length = length();
+    final var other = earlier.length();
+
+    return length < other || length == other &&
+      Math.max( getProbability(), Double.MIN_VALUE ) >
+        Math.max( earlier.getProbability(), Double.MIN_VALUE );
+  }
+
   /**
    * Removes multiple spaces from inside a string, as well as trimming white
    * space from both ends of the string.
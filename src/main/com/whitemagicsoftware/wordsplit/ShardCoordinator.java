@@ -0,0 +1,436 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Splits a conjoined text file into byte ranges (shards) that are segmented
+ * by a pool of worker JVMs running on the local host. Each worker loads the
+ * lexicon once, then segments shards until none remain. Each shard's output
+ * is written to its own file, then all the files are copied to standard
+ * output in input order. A shard whose worker fails is retried on a fresh
+ * worker, without redoing shards that have already completed.
+ * <p>
+ * The following system properties control sharding:
+ * </p>
+ * <ul>
+ * <li><code>wordsplit.shard.bytes</code> - Maximum shard size in bytes,
+ * used to decide the number of shards (default 64 MiB).</li>
+ * <li><code>wordsplit.shards</code> - Number of shards, overriding the
+ * maximum shard size.</li>
+ * <li><code>wordsplit.retries</code> - Number of times a failed shard is
+ * retried (default 2).</li>
+ * </ul>
+ * <p>
+ * Workers inherit this JVM's options, such as its maximum heap size. Each
+ * worker's common fork-join pool is limited to its share of the processors.
+ * </p>
+ */
+public class ShardCoordinator {
+  private static final Logger LOG =
+    Logger.getLogger( ShardCoordinator.class.getName() );
+
+  private static final String PROP_SHARD_BYTES = "wordsplit.shard.bytes";
+  private static final String PROP_SHARDS = "wordsplit.shards";
+  private static final String PROP_RETRIES = "wordsplit.retries";
+  private static final String PROP_PARALLELISM =
+    "java.util.concurrent.ForkJoinPool.common.parallelism";
+
+  private static final long DEFAULT_SHARD_BYTES = 64L << 20;
+  private static final int DEFAULT_RETRIES = 2;
+
+  /**
+   * Time allowed for workers to stop after a failure.
+   */
+  private static final long SHUTDOWN_SECONDS = 30;
+
+  private final File mHeuristics;
+  private final File mConjoined;
+  private final int mWorkers;
+
+  /**
+   * Worker processes that have been started but not yet stopped.
+   */
+  private final Set<Process> mProcesses = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param heuristics - Lexicon passed to each worker.
+   * @param conjoined  - Text file to split into shards.
+   * @param workers    - Number of worker JVMs to run at once.
+   */
+  public ShardCoordinator(
+    final File heuristics, final File conjoined, final int workers ) {
+    mHeuristics = heuristics;
+    mConjoined = conjoined;
+    mWorkers = Math.max( 1, workers );
+  }
+
+  /**
+   * Segments every shard, then writes the combined results to standard
+   * output.
+   *
+   * @throws IOException A shard failed more times than allowed.
+   */
+  public void run() throws IOException {
+    final var path = mConjoined.toPath();
+    final var shardBytes = Math.max( 1, Long.getLong(
+      PROP_SHARD_BYTES, DEFAULT_SHARD_BYTES ) );
+    final var sized = (Files.size( path ) + shardBytes - 1) / shardBytes;
+    final var shards = Integer.getInteger(
+      PROP_SHARDS, (int) Math.max( mWorkers, sized ) );
+    final var retries = Integer.getInteger( PROP_RETRIES, DEFAULT_RETRIES );
+    final var bounds = LineRanges.split( path, shards );
+    final var directory = Files.createTempDirectory( "wordsplit" );
+    final var executor = Executors.newFixedThreadPool( mWorkers );
+    final var pending = new ConcurrentLinkedQueue<Integer>();
+    final var results = new ArrayList<CompletableFuture<Path>>();
+
+    for( int i = 0; i < bounds.length - 1; i++ ) {
+      pending.add( i );
+      results.add( new CompletableFuture<>() );
+    }
+
+    try {
+      for( int i = 0; i < mWorkers; i++ ) {
+        executor.execute(
+          () -> serve( directory, bounds, pending, results, retries ) );
+      }
+
+      merge( results, System.out );
+    } finally {
+      stop( executor );
+      delete( directory );
+    }
+  }
+
+  /**
+   * Takes shards from the queue and segments them using one worker JVM,
+   * replacing the worker whenever it fails.
+   */
+  private void serve(
+    final Path directory,
+    final long[] bounds,
+    final Queue<Integer> pending,
+    final List<CompletableFuture<Path>> results,
+    final int retries ) {
+    Worker worker = null;
+    Integer shard;
+
+    try {
+      while( (shard = pending.poll()) != null ) {
+        final var result = results.get( shard );
+
+        try {
+          for( int attempt = 0; attempt <= retries && !result.isDone();
+               attempt++ ) {
+            if( Thread.currentThread().isInterrupted() ) {
+              return;
+            }
+
+            try {
+              if( worker == null ) {
+                worker = new Worker();
+              }
+
+              final var offset = bounds[ shard ];
+              final var end = bounds[ shard + 1 ];
+
+              result.complete(
+                segment( worker, directory, shard, offset, end ) );
+            } catch( final IOException | RuntimeException e ) {
+              if( worker != null ) {
+                worker.destroy();
+                worker = null;
+              }
+
+              // Stopping the pool kills workers; that is not a shard failure.
+              if( Thread.currentThread().isInterrupted() ) {
+                return;
+              }
+
+              LOG.warning( format(
+                "Shard %d (attempt %d of %d) failed: %s",
+                shard, attempt + 1, retries + 1, e.getMessage() ) );
+
+              if( attempt == retries ) {
+                result.completeExceptionally(
+                  new IOException( format( "Shard %d failed", shard ), e ) );
+              }
+            }
+          }
+        } finally {
+          // Never leave the merge waiting on a shard, whatever was thrown.
+          if( !result.isDone() ) {
+            result.completeExceptionally( new IOException(
+              format( "Shard %d was not segmented", shard ) ) );
+          }
+        }
+      }
+    } finally {
+      if( worker != null ) {
+        worker.close();
+      }
+    }
+  }
+
+  /**
+   * Asks a worker to segment one shard.
+   *
+   * @return The file containing the shard's segmented text.
+   */
+  private Path segment(
+    final Worker worker,
+    final Path directory,
+    final int shard,
+    final long offset,
+    final long end ) throws IOException {
+    final var output = directory.resolve( format( "%05d.txt", shard ) );
+    final var partial = directory.resolve( format( "%05d.tmp", shard ) );
+    final var started = System.nanoTime();
+    final var phrases = worker.segment( offset, end, partial );
+    final var seconds = (System.nanoTime() - started) / 1e9;
+
+    // Only a completed shard is given its final name.
+    Files.move( partial, output, ATOMIC_MOVE );
+
+    LOG.info( format(
+      "Shard %d: %d bytes, %d phrases in %.2f s (%.0f phrases/s)",
+      shard, end - offset, phrases, seconds, phrases / seconds ) );
+
+    return output;
+  }
+
+  /**
+   * Copies each shard's output, in shard order, to the given stream as
+   * soon as it and all preceding shards are complete.
+   */
+  private void merge(
+    final List<CompletableFuture<Path>> results, final OutputStream out )
+    throws IOException {
+    try {
+      for( final var result : results ) {
+        Files.copy( result.get(), out );
+      }
+
+      out.flush();
+    } catch( final ExecutionException e ) {
+      final var cause = e.getCause();
+
+      throw cause instanceof IOException
+        ? (IOException) cause
+        : new IOException( cause );
+    } catch( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IOException( e );
+    }
+  }
+
+  /**
+   * Stops the pool threads and their worker JVMs, waiting for both to
+   * finish so that no shard files are in use afterwards.
+   */
+  private void stop( final ExecutorService executor ) {
+    executor.shutdownNow();
+
+    // Threads blocked reading from a worker only return once it dies.
+    for( final var process : mProcesses ) {
+      process.destroyForcibly();
+    }
+
+    try {
+      if( !executor.awaitTermination( SHUTDOWN_SECONDS, TimeUnit.SECONDS ) ) {
+        LOG.warning( "Shard threads did not stop" );
+      }
+
+      for( final var process : mProcesses ) {
+        process.waitFor();
+      }
+    } catch( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Removes the working directory and any shard files it contains. Errors
+   * are logged rather than thrown so that they cannot mask the reason the
+   * run ended.
+   */
+  private void delete( final Path directory ) {
+    try( final var paths = Files.walk( directory ) ) {
+      paths.sorted( Comparator.reverseOrder() )
+           .map( Path::toFile )
+           .forEach( File::delete );
+    } catch( final IOException | UncheckedIOException e ) {
+      LOG.warning( format( "Cannot remove %s: %s", directory, e ) );
+    }
+  }
+
+  /**
+   * Builds the command line that launches a worker JVM.
+   */
+  private List<String> command() {
+    final var command = new ArrayList<String>();
+    final var home = System.getProperty( "java.home" );
+    final var java = Path.of( home, "bin", "java" );
+    final var arguments =
+      ManagementFactory.getRuntimeMXBean().getInputArguments();
+
+    command.add( java.toString() );
+
+    // Debuggers cannot attach more than one JVM to the same port.
+    for( final var arg : arguments ) {
+      if( !arg.startsWith( "-agentlib:jdwp" ) ) {
+        command.add( arg );
+      }
+    }
+
+    // Keep the workers' parallel searches from oversubscribing the host.
+    if( arguments.stream().noneMatch( a -> a.startsWith(
+      "-D" + PROP_PARALLELISM + "=" ) ) ) {
+      final var processors = Runtime.getRuntime().availableProcessors();
+      final var parallelism = Math.max( 1, processors / mWorkers );
+
+      command.add( "-D" + PROP_PARALLELISM + "=" + parallelism );
+    }
+
+    command.add( "-cp" );
+    command.add( System.getProperty( "java.class.path" ) );
+    command.add( Main.class.getName() );
+    command.add( mHeuristics.getPath() );
+    command.add( mConjoined.getPath() );
+    command.add( ShardWorker.ARGUMENT );
+
+    return command;
+  }
+
+  /**
+   * A worker JVM that has loaded the lexicon and accepts shard requests.
+   */
+  private final class Worker {
+    private final Process mProcess;
+    private final PrintStream mRequests;
+    private final BufferedReader mReplies;
+
+    /**
+     * Starts a worker JVM and waits for it to load the lexicon.
+     */
+    private Worker() throws IOException {
+      mProcess = new ProcessBuilder( command() )
+        .redirectError( ProcessBuilder.Redirect.INHERIT )
+        .start();
+      mProcesses.add( mProcess );
+      mRequests = new PrintStream( mProcess.getOutputStream(), true, UTF_8 );
+      mReplies = new BufferedReader(
+        new InputStreamReader( mProcess.getInputStream(), UTF_8 ) );
+
+      try {
+        expect( ShardWorker.READY );
+      } catch( final IOException e ) {
+        destroy();
+        throw e;
+      }
+    }
+
+    /**
+     * Segments the given range into a file.
+     *
+     * @return The number of phrases segmented.
+     */
+    private long segment( final long offset, final long end, final Path out )
+      throws IOException {
+      mRequests.println( offset + " " + end + " " + out );
+
+      if( mRequests.checkError() ) {
+        throw new IOException( "Worker stopped accepting requests" );
+      }
+
+      final var reply = expect( ShardWorker.DONE + " " );
+      return Long.parseLong( reply.substring( ShardWorker.DONE.length() + 1 ) );
+    }
+
+    private String expect( final String prefix ) throws IOException {
+      final var reply = mReplies.readLine();
+
+      if( reply == null || !reply.startsWith( prefix ) ) {
+        throw new IOException( reply == null
+          ? "Worker exited with status " + exitStatus()
+          : "Unexpected reply: " + reply );
+      }
+
+      return reply;
+    }
+
+    private String exitStatus() {
+      try {
+        return Integer.toString( mProcess.waitFor() );
+      } catch( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        return "unknown";
+      }
+    }
+
+    /**
+     * Closes the worker's input so that it exits once idle.
+     */
+    private void close() {
+      mRequests.close();
+
+      try {
+        mProcess.waitFor();
+        mProcesses.remove( mProcess );
+      } catch( final InterruptedException e ) {
+        destroy();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void destroy() {
+      mProcess.destroyForcibly();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Runs inside a worker JVM started by the {@link ShardCoordinator}. The
+ * lexicon is loaded once, then shards are split as they are requested.
+ * <p>
+ * Requests arrive on standard input, one per line, as the shard's starting
+ * offset, ending offset, and output file path, separated by spaces. The
+ * worker writes {@link #READY} to standard output after loading the
+ * lexicon, and {@link #DONE} followed by the number of phrases after
+ * finishing each shard. The worker exits when standard input is closed.
+ * </p>
+ */
+public class ShardWorker {
+  /**
+   * Command-line argument that starts a worker instead of a coordinator.
+   */
+  static final String ARGUMENT = "--worker";
+
+  static final String READY = "ready";
+  static final String DONE = "done";
+
+  private final File mHeuristics;
+  private final File mConjoined;
+
+  /**
+   * @param heuristics - Lexicon to load.
+   * @param conjoined  - Text file that shard offsets refer to.
+   */
+  public ShardWorker( final File heuristics, final File conjoined ) {
+    mHeuristics = heuristics;
+    mConjoined = conjoined;
+  }
+
+  /**
+   * Splits requested shards until standard input is closed.
+   */
+  public void run() throws IOException {
+    final var segmenter = new TextSegmenter( mHeuristics );
+    final var in = new BufferedReader( new InputStreamReader(
+      System.in, UTF_8 ) );
+    final var out = new PrintStream( System.out, true, UTF_8 );
+
+    out.println( READY );
+
+    String request;
+
+    while( (request = in.readLine()) != null ) {
+      final var fields = request.split( " ", 3 );
+      final var offset = Long.parseLong( fields[ 0 ] );
+      final var end = Long.parseLong( fields[ 1 ] );
+      final long phrases;
+
+      try( final var output = new PrintStream( new BufferedOutputStream(
+        new FileOutputStream( fields[ 2 ] ) ) ) ) {
+        phrases = segmenter.run( mConjoined, offset, end, output );
+
+        if( output.checkError() ) {
+          throw new IOException( "Cannot write " + fields[ 2 ] );
+        }
+      }
+
+      out.println( DONE + " " + phrases );
+    }
+
+    segmenter.report();
+  }
+}
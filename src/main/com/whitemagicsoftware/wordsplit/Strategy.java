@@ -0,0 +1,45 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+/**
+ * Identifies the algorithm used to split a single concatenated phrase.
+ * Strategies are listed from cheapest to most expensive.
+ */
+public enum Strategy {
+  /**
+   * Single left-to-right pass that accepts the solution when enough of
+   * the candidate words were found in the phrase.
+   */
+  GREEDY,
+
+  /**
+   * Combinatorial search that abandons any combination whose words are,
+   * in total, longer than the phrase.
+   */
+  BOUNDED,
+
+  /**
+   * Bounded search whose branches are explored concurrently by fork-join
+   * tasks; used when the search is large enough to repay the overhead.
+   */
+  PARALLEL
+}
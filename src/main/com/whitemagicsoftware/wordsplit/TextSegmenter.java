@@ -23,6 +23,7 @@ package com.whitemagicsoftware.wordsplit;
 import java.io.*;
 import java.util.*;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.*;
 
 /**
@@ -44,13 +45,46 @@ public class TextSegmenter {
    */
   private final List<String> mConjoined;
 
+  /**
+   * Chooses how each concatenated phrase is split.
+   */
+  private final Dispatcher mDispatcher;
+
   /**
    * Default constructor.
    */
   public TextSegmenter( final File heuristics, final File conjoined )
     throws IOException {
-    mHeuristics = loadHeuristics( heuristics );
-    mConjoined = loadConjoined( conjoined );
+    this( heuristics, conjoined, new Dispatcher() );
+  }
+
+  /**
+   * @param dispatcher - Routes each phrase to a splitting strategy.
+   */
+  public TextSegmenter(
+    final File heuristics, final File conjoined, final Dispatcher dispatcher )
+    throws IOException {
+    this( loadHeuristics( heuristics ), loadConjoined( conjoined ),
+          dispatcher );
+  }
+
+  /**
+   * Loads only the lexicon, for splitting text a range at a time.
+   *
+   * @see #run(File, long, long, PrintStream)
+   */
+  public TextSegmenter( final File heuristics ) throws IOException {
+    this( loadHeuristics( heuristics ), Collections.emptyList(),
+          new Dispatcher() );
+  }
+
+  private TextSegmenter(
+    final Map<String, Double> heuristics,
+    final List<String> conjoined,
+    final Dispatcher dispatcher ) {
+    mHeuristics = heuristics;
+    mConjoined = conjoined;
+    mDispatcher = dispatcher;
   }
 
   /**
@@ -61,6 +95,50 @@ public class TextSegmenter {
     for( final var text : mConjoined ) {
       System.out.printf( "%s,%s\n", text, segments( mHeuristics, text ) );
     }
+
+    report();
+  }
+
+  /**
+   * Splits the lines within a byte range of the conjoined text, which must
+   * start on a line boundary. Lines are read and their results written one
+   * at a time, so memory use does not grow with the size of the range.
+   *
+   * @param conjoined - Text file containing the range.
+   * @param offset    - Index of the first byte to split.
+   * @param end       - Index after the last byte to split.
+   * @param out       - Destination for the split text.
+   * @return The number of phrases split.
+   */
+  public long run(
+    final File conjoined,
+    final long offset,
+    final long end,
+    final PrintStream out ) throws IOException {
+    final var range = LineRanges.open( conjoined.toPath(), offset, end );
+    long phrases = 0;
+
+    try( final var reader = new BufferedReader(
+      new InputStreamReader( range, UTF_8 ) ) ) {
+      String line;
+
+      while( (line = reader.readLine()) != null ) {
+        if( line.length() >= MIN_LEX_LENGTH ) {
+          final var text = line.toLowerCase();
+          out.printf( "%s,%s\n", text, segments( mHeuristics, text ) );
+          phrases++;
+        }
+      }
+    }
+
+    return phrases;
+  }
+
+  /**
+   * Logs how phrases were routed by the dispatcher.
+   */
+  public void report() {
+    getDispatcher().report();
   }
 
   /**
@@ -72,6 +150,7 @@ public class TextSegmenter {
    * @return The concat text with spaces.
    */
   private String segments( Map<String, Double> heuristics, String concat ) {
+    final var started = System.nanoTime();
     final var length = concat.length();
     final var words = new ArrayList<Map.Entry<String, Double>>();
 
@@ -91,7 +170,6 @@ public class TextSegmenter {
 
     var result = new StringBuilder( length * 2 );
     var joined = new StringBuilder( concat );
-    int wordCount = words.size();
     int wordsUsed = 0;
 
     // If all the words can be accounted for, then the problem is solved.
@@ -131,127 +209,59 @@ public class TextSegmenter {
     // The 80% case is when there was a 1:1 match between the concatenated
     // text and having found all the suggested words in said text. If there
     // was only one possible match, then there is no point performing any
-    // further analysis.
-    boolean solved = wordCount == wordsUsed;
-
-    if( !solved ) {
-      result.setLength( 0 );
-
-      List<SegmentAnalysis> saList = combinations( concat, words );
-      List<SegmentAnalysis> candidates = new ArrayList<>();
-
-      int minLength = Integer.MAX_VALUE;
-
-      // Record the candidates with the shortest remaining character
-      // count (after splitting and removing the most probable words).
-      // This loop primarily reduces the candidates based on whether all
-      // the words in one particular combination of words were used and
-      // each of those words exists in the heuristics.
-      for( SegmentAnalysis sa : saList ) {
-        if( sa.matchedAllWords() ) {
-          int saLength = sa.length();
-
-          if( saLength < minLength ) {
-            minLength = saLength;
-          }
-
-          candidates.add( sa );
-        }
-      }
-
-      // Swap the segment analysis list for the candidate list. This
-      // step isn't necessary, but it makes the previous loop and any
-      // subsequent loops operate on the same variables with the same
-      // meaning: the "candidates" list will shrink until there is only
-      // one element -- the solution.
-      swap( saList, candidates );
-
-      // The solutions that have the fewest remaining letters are the
-      // ones to keep. The winning solution will be decided by probability.
-      for( SegmentAnalysis sa : saList ) {
-        if( sa.length() == minLength ) {
-          candidates.add( sa );
-        }
-      }
-
-      swap( saList, candidates );
-
-      SegmentAnalysis solution = saList.get( 0 );
-      double maxProbability = Double.MIN_VALUE;
-
-      // Find the solution with the highest probability. The probability
-      // is calculated using the probabilities from the heuristics (which
-      // are, in turn, used by the SegmentAnalysis instance).
-      for( final var sa : saList ) {
-        double probability = sa.getProbability();
-
-        if( probability > maxProbability ) {
-          solution = sa;
-          maxProbability = probability;
-        }
-      }
+    // further analysis. Otherwise, the dispatcher decides how much of the
+    // combination space must be searched.
+    final var route = getDispatcher().route( concat, words, wordsUsed );
+
+    if( route.getStrategy() != Strategy.GREEDY ) {
+      // Of the combinations that used all their words, the solution has
+      // the fewest remaining characters (after splitting and removing the
+      // words), then the highest probability. The probability is
+      // calculated using the probabilities from the heuristics (which are,
+      // in turn, used by the SegmentAnalysis instance).
+      final var solution = combinations( concat, words, route );
 
       result = solution.apply( concat );
     }
 
-    return result.toString().trim();
-  }
+    getDispatcher().record( route, System.nanoTime() - started );
 
-  /**
-   * Copies the elements from the second list into the first list, then
-   * clears the second list. This method is used so that the candidates
-   * variable in the 'segments' method always whittles down to the most
-   * likely solution.
-   */
-  private void swap(
-    final List<SegmentAnalysis> l1,
-    final List<SegmentAnalysis> l2 ) {
-    l1.clear();
-    l1.addAll( l2 );
-    l2.clear();
+    return result.toString().trim();
   }
 
   /**
-   * This method recursively generates a list of all possible word
-   * combinations from a list of words. The result is an analysis of each
-   * combination, containing details like probability, relative word
-   * lengths, and so forth.
+   * This method recursively generates all possible word combinations from
+   * a list of words, analysing each combination for details like
+   * probability, relative word lengths, and so forth. Only the most likely
+   * analysis is returned. Combinations whose words could not all fit
+   * within the concatenated text are skipped. Large searches are split
+   * across processors.
    */
-  private List<SegmentAnalysis> combinations(
-    final String concat, List<Map.Entry<String, Double>> words ) {
+  private SegmentAnalysis combinations(
+    final String concat,
+    final List<Map.Entry<String, Double>> words,
+    final Dispatcher.Route route ) {
     final var v = new SegmentVisitor( concat );
+    final var budget = concat.length();
+    final var forkDepth = getDispatcher().forkDepth( route );
 
-    final var combinations = new Combinations( v );
-    return combinations.root( words );
+    final var combinations = new Combinations( v, budget, forkDepth );
+    return combinations.best( words );
   }
 
   /**
    * Loads all the words and word probability from the dictionary. Words
    * are separated from the probability by a comma.
    */
-  private Map<String, Double> loadHeuristics( final File heuristicsData )
+  private static Map<String, Double> loadHeuristics( final File heuristicsData )
     throws IOException {
-    final var dictionary = new TreeMap<String, Double>();
-
-    readAllLines(heuristicsData.toPath()).forEach( line -> {
-      final var lex = line.toLowerCase().split( "," );
-
-      if( lex[ 0 ].length() >= MIN_LEX_LENGTH ) {
-        try {
-          dictionary.put( lex[ 0 ], Double.parseDouble( lex[ 1 ] ) );
-        } catch( Exception e ) {
-          dictionary.put( lex[ 0 ], getDefaultProbability() );
-        }
-      }
-    });
-
-    return dictionary;
+    return new LexiconLoader( heuristicsData, MIN_LEX_LENGTH ).load();
   }
 
   /**
    * Inserts the lines of concatenated text into the internal list.
    */
-  private List<String> loadConjoined( final File conjoinedData )
+  private static List<String> loadConjoined( final File conjoinedData )
     throws IOException {
     final var conjoined = new ArrayList<String>();
 
@@ -264,11 +274,7 @@ public class TextSegmenter {
     return conjoined;
   }
 
-  /**
-   * Returns the default probability when no value is given. This is
-   * likely an error in the heuristics that should be fixed.
-   */
-  private Double getDefaultProbability() {
-    return 0.0;
+  private Dispatcher getDispatcher() {
+    return mDispatcher;
   }
 }
@@ -22,9 +22,13 @@ package com.whitemagicsoftware.wordsplit;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 class CombinationsTest {
+  private static final int MAX_FORK_DEPTH = 6;
+
   /**
    * Tests the class.
    */
@@ -39,5 +43,149 @@ class CombinationsTest {
 
     final var combinations = new Combinations( pv );
     combinations.root( list );
+
+    // Equal remaining length and probability: the first visited wins.
+    check( "abcd", words( "abc", 0.5, "bcd", 0.5 ) );
+    check( "abcd", words( "bcd", 0.5, "abc", 0.5 ) );
+
+    // Probabilities no greater than Double.MIN_VALUE are all equal.
+    check( "abcd", words( "abc", 0.0, "bcd", Double.MIN_VALUE ) );
+    check( "abcd", words( "abc", 0.0, "bcd", 0.0, "cd", 0.0 ) );
+
+    // Fewer remaining characters wins over a higher probability.
+    check( "abcd", words( "abc", 0.9, "ab", 0.1, "cd", 0.1 ) );
+
+    final var random = new Random( 1 );
+
+    for( int i = 0; i < 500; i++ ) {
+      final var concat = randomText( random, 4 + random.nextInt( 12 ) );
+      check( concat, randomWords( random, concat ) );
+    }
+
+    System.out.println( "best() matches list selection" );
+  }
+
+  /**
+   * Verifies that a bounded search with every fork depth selects the same
+   * analysis as filtering the full list of analyses.
+   */
+  private static void check(
+    final String concat, final List<Map.Entry<String, Double>> words ) {
+    final var expected = select( concat, words );
+
+    for( int depth = 0; depth <= MAX_FORK_DEPTH; depth++ ) {
+      final var visitor = new SegmentVisitor( concat );
+      final var budget = concat.length();
+      final var actual =
+        new Combinations( visitor, budget, depth ).best( words );
+
+      if( !describe( concat, expected ).equals( describe( concat, actual ) ) ) {
+        throw new AssertionError( String.format(
+          "%s %s at fork depth %d: expected %s, got %s",
+          concat, words, depth,
+          describe( concat, expected ), describe( concat, actual ) ) );
+      }
+    }
+  }
+
+  /**
+   * Collects every analysis in visiting order, then whittles them down
+   * using the rules that TextSegmenter applied before solutions were
+   * selected during the search.
+   */
+  private static SegmentAnalysis select(
+    final String concat, final List<Map.Entry<String, Double>> words ) {
+    // Unbounded, so that pruning in the searches under test is checked.
+    final var saList =
+      new Combinations( new SegmentVisitor( concat ) ).root( words );
+
+    final var candidates = new ArrayList<SegmentAnalysis>();
+    int minLength = Integer.MAX_VALUE;
+
+    for( final var sa : saList ) {
+      if( sa.matchedAllWords() ) {
+        minLength = Math.min( minLength, sa.length() );
+        candidates.add( sa );
+      }
+    }
+
+    final var shortest = new ArrayList<SegmentAnalysis>();
+
+    for( final var sa : candidates ) {
+      if( sa.length() == minLength ) {
+        shortest.add( sa );
+      }
+    }
+
+    if( shortest.isEmpty() ) {
+      return null;
+    }
+
+    var solution = shortest.get( 0 );
+    double maxProbability = Double.MIN_VALUE;
+
+    for( final var sa : shortest ) {
+      final var probability = sa.getProbability();
+
+      if( probability > maxProbability ) {
+        solution = sa;
+        maxProbability = probability;
+      }
+    }
+
+    return solution;
+  }
+
+  private static String describe(
+    final String concat, final SegmentAnalysis sa ) {
+    return sa == null
+      ? "none"
+      : sa.apply( concat ) + " (" + sa.getProbability() + ")";
+  }
+
+  private static List<Map.Entry<String, Double>> words(
+    final Object... pairs ) {
+    final var words = new ArrayList<Map.Entry<String, Double>>();
+
+    for( int i = 0; i < pairs.length; i += 2 ) {
+      words.add( new AbstractMap.SimpleEntry<>(
+        (String) pairs[ i ], (Double) pairs[ i + 1 ] ) );
+    }
+
+    return words;
+  }
+
+  /**
+   * Uses a small alphabet so that candidate words overlap and repeat.
+   */
+  private static String randomText( final Random random, final int length ) {
+    final var text = new StringBuilder( length );
+
+    for( int i = 0; i < length; i++ ) {
+      text.append( (char) ('a' + random.nextInt( 3 )) );
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Picks substrings of the text as candidates, with few distinct
+   * probabilities so that ties are common.
+   */
+  private static List<Map.Entry<String, Double>> randomWords(
+    final Random random, final String concat ) {
+    final var words = new ArrayList<Map.Entry<String, Double>>();
+    final var count = 1 + random.nextInt( 12 );
+
+    for( int i = 0; i < count; i++ ) {
+      final var length = 2 + random.nextInt( 3 );
+      final var start = random.nextInt( concat.length() - length + 1 );
+      final var probability = (1 + random.nextInt( 2 )) / 4.0;
+
+      words.add( new AbstractMap.SimpleEntry<>(
+        concat.substring( start, start + length ), probability ) );
+    }
+
+    return words;
   }
 }
@@ -0,0 +1,137 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+class DispatcherTest {
+  /**
+   * Tests the class.
+   */
+  public static void main( final String[] args ) {
+    final var random = new Random( 1 );
+    final var dispatcher = new Dispatcher( 1.0, 1.0, Long.MAX_VALUE, 0 );
+
+    // Visit counts match the bounded search, including when there are more
+    // candidates than the search examines.
+    for( int i = 0; i < 300; i++ ) {
+      final var concat = "x".repeat( 2 + random.nextInt( 40 ) );
+      final var words = randomWords( random, random.nextInt( 30 ) );
+      final var route = dispatcher.route( concat, words, 0 );
+      final var visits = visits( concat, words );
+
+      check( words.isEmpty() || route.getVisits() == visits,
+        concat.length() + " " + words.size() + ": expected " + visits +
+          " visits, got " + route.getVisits() );
+    }
+
+    final var many = randomWords( random, Combinations.MAX_DEPTH + 3 );
+    final var longest = "x".repeat( 12 );
+    check( dispatcher.route( longest, many, 0 ).getVisits() ==
+             visits( longest, many ), "visits beyond the maximum depth" );
+
+    // Complete coverage is always greedy; anything less is searched.
+    final var words = randomWords( random, 4 );
+    check( dispatcher.route( "abcdefgh", words, 4 ).getStrategy() ==
+             Strategy.GREEDY, "expected greedy with complete coverage" );
+    check( dispatcher.route( "abcdefgh", words, 3 ).getStrategy() ==
+             Strategy.BOUNDED, "expected bounded with partial coverage" );
+
+    // Lower thresholds accept partial coverage, but only for sparse
+    // candidates.
+    final var lenient = new Dispatcher( 0.5, 1.0, Long.MAX_VALUE, 0 );
+    final var sparse = words( "ab", "cd" );
+    final var dense = words( "abcd", "bcde", "cdef" );
+    check( lenient.route( "abcdefgh", sparse, 1 ).getStrategy() ==
+             Strategy.GREEDY, "expected greedy for sparse candidates" );
+    check( lenient.route( "abcdef", dense, 2 ).getStrategy() ==
+             Strategy.BOUNDED, "expected bounded for dense candidates" );
+    check( lenient.route( "abcdefgh", sparse, 0 ).getStrategy() ==
+             Strategy.BOUNDED, "expected bounded for low coverage" );
+
+    // Searches visiting at least the threshold are parallel.
+    final var concat = "x".repeat( 20 );
+    final var visits = visits( concat, many );
+    final var below = new Dispatcher( 1.0, 1.0, visits + 1, 3 );
+    final var at = new Dispatcher( 1.0, 1.0, visits, 3 );
+    final var belowRoute = below.route( concat, many, 0 );
+    final var atRoute = at.route( concat, many, 0 );
+    check( belowRoute.getStrategy() == Strategy.BOUNDED,
+      "expected bounded below the parallel threshold" );
+    check( atRoute.getStrategy() == Strategy.PARALLEL,
+      "expected parallel at the parallel threshold" );
+    check( below.forkDepth( belowRoute ) == 0 && at.forkDepth( atRoute ) == 3,
+      "expected forking only for parallel searches" );
+
+    System.out.println( "Dispatcher routes and counts visits correctly" );
+  }
+
+  /**
+   * Counts how many combinations a bounded search visits.
+   */
+  private static long visits(
+    final String concat, final List<Map.Entry<String, Double>> words ) {
+    final var segmenter = new SegmentVisitor( concat );
+    final var count = new AtomicLong();
+    final Visitor<Map.Entry<String, Double>> counter = list -> {
+      count.incrementAndGet();
+      return segmenter.visit( list );
+    };
+
+    new Combinations( counter, concat.length() ).best( words );
+
+    return count.get();
+  }
+
+  private static List<Map.Entry<String, Double>> randomWords(
+    final Random random, final int count ) {
+    final var words = new ArrayList<Map.Entry<String, Double>>();
+
+    for( int i = 0; i < count; i++ ) {
+      words.add( new AbstractMap.SimpleEntry<>(
+        "x".repeat( 2 + random.nextInt( 8 ) ), 0.5 ) );
+    }
+
+    return words;
+  }
+
+  private static List<Map.Entry<String, Double>> words(
+    final String... keys ) {
+    final var words = new ArrayList<Map.Entry<String, Double>>();
+
+    for( final var key : keys ) {
+      words.add( new AbstractMap.SimpleEntry<>( key, 0.5 ) );
+    }
+
+    return words;
+  }
+
+  private static void check( final boolean condition, final String message ) {
+    if( !condition ) {
+      throw new AssertionError( message );
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
+
+class LexiconLoaderTest {
+  /**
+   * Tests the class.
+   */
+  public static void main( final String[] args ) throws IOException {
+    // Byte order mark, CRLF endings, a missing probability, an unparsable
+    // probability, a word that is too short, and a duplicate word.
+    final var loader = load( "\uFEFFBank,0.5\r\n" +
+      "account,1e-3\r\n" +
+      "status,\n" +
+      "type,abc\n" +
+      "a,0.9\n" +
+      "desc, .25 \n" +
+      "bank,0.75" );
+    final var lexicon = loader.load();
+
+    System.out.println( lexicon );
+
+    check( lexicon, "bank", 0.75 );
+    check( lexicon, "account", 0.001 );
+    check( lexicon, "status", 0.0 );
+    check( lexicon, "type", 0.0 );
+    check( lexicon, "desc", 0.25 );
+    check( lexicon.size() == 5 && !lexicon.containsKey( "a" ),
+      "expected 5 words without 'a'" );
+    check( loader.getInvalid() == 2, "expected 2 invalid lines" );
+
+    // Non-ASCII bytes (an accent and a no-break space) following a number
+    // are not white space.
+    final var accented = load( "ab,0.5\u00E9\ncd,0.5\u00A0\nef,0.5\n" );
+    final var trailing = accented.load();
+
+    System.out.println( trailing );
+
+    check( trailing, "ab", 0.0 );
+    check( trailing, "cd", 0.0 );
+    check( trailing, "ef", 0.5 );
+    check( accented.getInvalid() == 2, "expected 2 invalid lines" );
+
+    large();
+  }
+
+  /**
+   * Loads a generated lexicon that is split into several chunks. A word in
+   * the first chunk is repeated in the last. Every generated word starts
+   * with a byte order mark, which is only skipped at the start of the file,
+   * so it must remain wherever a chunk boundary falls.
+   */
+  private static void large() throws IOException {
+    final var random = new Random( 1 );
+    final var csv = new StringBuilder( "\uFEFFrepeated,0.25\n" );
+    final var expected = new HashMap<String, Double>();
+    final double[] scales = { 1, 1e-5, 1e-12 };
+
+    for( int i = 0; csv.length() < 3 * LexiconLoader.MIN_CHUNK; i++ ) {
+      final var word = "\uFEFFword" + i;
+      final var value = Double.toString(
+        random.nextDouble() * scales[ i % scales.length ] );
+
+      csv.append( word ).append( ',' ).append( value ).append( '\n' );
+      expected.put( word, Double.parseDouble( value ) );
+    }
+
+    csv.append( "repeated,0.75\n" );
+    expected.put( "repeated", 0.75 );
+
+    final var loader = load( csv.toString() );
+    final var lexicon = loader.load();
+
+    for( final var entry : expected.entrySet() ) {
+      check( lexicon, entry.getKey(), entry.getValue() );
+    }
+
+    check( lexicon.size() == expected.size(),
+      "expected " + expected.size() + " words, got " + lexicon.size() );
+    check( loader.getInvalid() == 0, "expected no invalid lines" );
+    System.out.println( lexicon.size() + " generated words loaded" );
+  }
+
+  private static LexiconLoader load( final String csv ) throws IOException {
+    final var lexicon = File.createTempFile( "lexicon", ".csv" );
+    lexicon.deleteOnExit();
+
+    write( lexicon.toPath(), csv.getBytes( UTF_8 ) );
+
+    return new LexiconLoader( lexicon, 2 );
+  }
+
+  private static void check(
+    final Map<String, Double> lexicon,
+    final String word,
+    final double probability ) {
+    check( Double.valueOf( probability ).equals( lexicon.get( word ) ),
+      "expected " + word + "=" + probability + ", got " +
+        lexicon.get( word ) );
+  }
+
+  private static void check( final boolean condition, final String message ) {
+    if( !condition ) {
+      throw new AssertionError( message );
+    }
+  }
+}
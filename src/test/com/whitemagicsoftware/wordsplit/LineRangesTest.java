@@ -0,0 +1,81 @@
+/* Copyright 2022 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.whitemagicsoftware.wordsplit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.write;
+
+class LineRangesTest {
+  /**
+   * Tests the class.
+   */
+  public static void main( final String[] args ) throws IOException {
+    // Every range of an empty file is empty.
+    check( "", 4, 0, 0, 0, 0, 0 );
+
+    // The last range ends at the file length without a newline.
+    check( "ab\ncd\nef", 2, 0, 6, 8 );
+
+    // Lines longer than the nominal range size leave empty ranges.
+    check( "aaaaaaaaaa\nb\n", 4, 0, 11, 11, 11, 13 );
+    check( "abcdefgh", 3, 0, 8, 8, 8 );
+
+    // A nominal boundary just after a newline is already a line start.
+    check( "abc\ndef\n", 2, 0, 4, 8 );
+
+    final var path = create( "abc\ndef\n" );
+
+    try( final var in = LineRanges.open( path, 4, 8 ) ) {
+      final var text = new String( in.readAllBytes(), UTF_8 );
+
+      if( !"def\n".equals( text ) ) {
+        throw new AssertionError( "expected 'def\\n', got '" + text + "'" );
+      }
+    }
+
+    System.out.println( "LineRanges split and open ranges correctly" );
+  }
+
+  private static void check(
+    final String text, final int shards, final long... expected )
+    throws IOException {
+    final var actual = LineRanges.split( create( text ), shards );
+
+    if( !Arrays.equals( expected, actual ) ) {
+      throw new AssertionError( String.format(
+        "%s in %d: expected %s, got %s",
+        text.replace( "\n", "\\n" ), shards,
+        Arrays.toString( expected ), Arrays.toString( actual ) ) );
+    }
+  }
+
+  private static Path create( final String text ) throws IOException {
+    final var file = File.createTempFile( "ranges", ".txt" );
+    file.deleteOnExit();
+
+    return write( file.toPath(), text.getBytes( UTF_8 ) );
+  }
+}